@@ -1,9 +1,41 @@
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 import java.util.Scanner;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32C;
 
 public class Classe
 {
@@ -12,29 +44,25 @@ public class Classe
 
     public static void main(String[] args)
     {
-        List<Pokemon> pokemon = new ArrayList<Pokemon>(801);
-
-        // Stream do arquivo CSV.
-        try (Scanner csvScanner =
-                 new Scanner(new File((args.length > 0) ? args[0] : DEFAULT_DB))) {
-            // Descarta a primeira linha (cabeçalho).
-            csvScanner.nextLine();
+        List<Pokemon> pokemon;
 
-            // Lê cada linha do CSV e cria um Pokémon.
-            while (csvScanner.hasNextLine()) {
-                String input = csvScanner.nextLine();
-                pokemon.add(new Pokemon(input));
-            }
-        } catch (FileNotFoundException e) {
+        // Indexa o arquivo CSV. Cada Pokémon só é lido quando for selecionado.
+        try {
+            pokemon = IndiceCSV.abrir((args.length > 0) ? args[0] : DEFAULT_DB);
+        } catch (IOException e) {
             e.printStackTrace();
             return;
         }
 
+        // Indexa os ids, que podem ser esparsos e fora de ordem.
+        IndiceIds ids = IndiceIds.de(pokemon);
+
         // Lê da entrada padrão até encontrar "FIM".
         try (Scanner sc = new Scanner(System.in)) {
             String input;
             while (!(input = sc.nextLine()).equals("FIM"))
-                pokemon.get(Integer.parseInt(input) - 1).imprimir();
+                pokemon.get(ids.linha(Integer.parseInt(input))).imprimir();
+            Saida.descarregar();
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -46,26 +74,48 @@ public class Classe
 class Pokemon implements /* Comparable<Pokemon>, */ Cloneable
 {
     private int id, generation, captureRate;
-    private String name, description;
-    private List<PokeType> types;
-    private List<String> abilities;
+    private String name;
+    private RankNomes rankTabela; // Tabela de onde veio o nameRank, ou null.
+    private int nameRank;
+    private int description; // Código da descrição no Dicionario.
+    private byte type1, type2; // Ordinais dos tipos, ou -1 se não houver.
+    private int[] abilities; // Códigos das habilidades. Nunca alterado no lugar.
     private double weight, height;
     private boolean isLegendary;
-    private LocalDate captureDate; // Os métodos de Date são deprecados.
+
+    // Data de captura empacotada como aaaammdd, que compara como inteiro e só vira
+    // LocalDate quando pedida. LocalDate.MIN não cabe, e vira DATA_NULA.
+    private int captureDate;
+    private static final int DATA_NULA = Integer.MIN_VALUE;
+
+    // Colunas já lidas (uma por bit de Coluna) e, enquanto faltar alguma, a linha de
+    // onde lê-las quando forem pedidas.
+    private int lidas;
+    private ByteBuffer origem;
+    private int origemIni, origemFim;
+    static final int TODAS = (1 << Coluna.values().length) - 1;
+
+    // Linha já renderizada (em UTF-8, sem a quebra), guardada na primeira impressão
+    // se o cache estiver ligado e descartada por qualquer setter. Nunca é alterada
+    // no lugar, então clones podem compartilhá-la.
+    private byte[] linha;
+    private static volatile boolean cacheLinhas =
+        Boolean.getBoolean("pokemon.cacheLinhas");
 
     public Pokemon()
     {
         this.id = 0; // Chave padrão.
         this.generation = 0; // Geração padrão.
         this.name = "Desconhecido"; // Nome padrão.
-        this.description = "Sem descrição"; // Descrição padrão.
-        this.types = new ArrayList<>(); // Lista de tipos vazia.
-        this.abilities = new ArrayList<>(); // Lista de habilidades vazia.
+        this.description = Dicionario.codigo("Sem descrição"); // Descrição padrão.
+        this.type1 = this.type2 = -1; // Sem tipos.
+        this.abilities = new int[0]; // Lista de habilidades vazia.
         this.weight = 0.0; // Peso padrão.
         this.height = 0.0; // Altura padrão.
         this.captureRate = 0; // Taxa de captura padrão.
         this.isLegendary = false; // Não é lendário por padrão.
-        this.captureDate = LocalDate.MIN; // Data nula (01/01/-9999999…)
+        this.captureDate = DATA_NULA; // Data nula (01/01/-9999999…)
+        this.lidas = TODAS;
     }
 
     public Pokemon(int id, int generation, String name, String description,
@@ -76,14 +126,15 @@ class Pokemon implements /* Comparable<Pokemon>, */ Cloneable
         this.id = id;
         this.generation = generation;
         this.name = name;
-        this.description = description;
-        this.types = types;
-        this.abilities = abilities;
+        this.description = Dicionario.codigo(description);
+        this.guardarTipos(types);
+        this.abilities = Dicionario.codigos(abilities);
         this.weight = weight;
         this.height = height;
         this.captureRate = captureRate;
         this.isLegendary = isLegendary;
-        this.captureDate = captureDate;
+        this.captureDate = empacotar(captureDate);
+        this.lidas = TODAS;
     }
 
     public Pokemon(String str)
@@ -91,91 +142,227 @@ class Pokemon implements /* Comparable<Pokemon>, */ Cloneable
         this.ler(str);
     }
 
+    public Pokemon(ByteBuffer buf, int ini, int fim)
+    {
+        this.ler(buf, ini, fim);
+    }
+
+    // Lê só as `colunas` dadas. As outras são lidas da mesma linha quando forem
+    // pedidas pela primeira vez, então `buf` não deve mudar enquanto isso.
+    public Pokemon(ByteBuffer buf, int ini, int fim, Set<Coluna> colunas)
+    {
+        this(buf, ini, fim, mascara(colunas));
+    }
+
+    Pokemon(ByteBuffer buf, int ini, int fim, int colunas)
+    {
+        this.ler(buf, ini, fim, colunas);
+        if (colunas != TODAS) {
+            this.origem = buf;
+            this.origemIni = ini;
+            this.origemFim = fim;
+        }
+    }
+
     public void ler(String str) throws ArrayIndexOutOfBoundsException
     {
-        // Três seções principais da String de entrada: os elementos antes das
-        // habilidades, a lista de habilidades em si, e os elementos após as
-        // habilidades.
-        String[] sec = str.split("\"");
+        byte[] linha = str.getBytes(StandardCharsets.UTF_8);
+        ler(ByteBuffer.wrap(linha), 0, linha.length);
+    }
+
+    // Lê o Pokémon a partir dos bytes (UTF-8) de uma linha em [ini, fim), campo
+    // a campo, numa única passada.
+    public void ler(ByteBuffer buf, int ini, int fim) throws ArrayIndexOutOfBoundsException
+    {
+        ler(buf, ini, fim, TODAS);
+    }
 
-        // Separa as seções em si em elementos individuais.
-        String[] s1 = sec[0].split(",");
-        String[] s2 = sec[2].split(",");
+    // Lê só as colunas cujo bit está em `colunas`, pulando as outras sem decodificá-las.
+    private void ler(ByteBuffer buf, int ini, int fim, int colunas)
+        throws ArrayIndexOutOfBoundsException
+    {
+        AnalisadorCSV csv = AnalisadorCSV.local(buf, ini, fim);
+        rankTabela = null; // O nome pode mudar, então o rank é procurado de novo.
+        linha = null;
 
         // Lê os elementos iniciais.
-        id = Integer.parseInt(s1[0]);
-        generation = Integer.parseInt(s1[1]);
-        name = s1[2];
-        description = s1[3];
-
-        // Adiciona os tipos. Usamos o .valueOf() do enum para facilitar.
-        types = new ArrayList<>();
-        types.add(PokeType.valueOf(s1[4].toUpperCase()));
-        // Se tiver segundo tipo, adiciona-o.
-        if (s1.length > 5 && !s1[5].isEmpty())
-            types.add(PokeType.valueOf(s1[5].toUpperCase()));
-
-        // Remove os caracteres extra da lista de abilidades e as adiciona.
-        abilities = new ArrayList<>();
-        for (String a : sec[1].split(", ")) {
-            a = a.replace("[", "").replace("]", "").replace("'", "");
-            if (!a.isEmpty())
-                abilities.add(a);
+        if (lendo(colunas, Coluna.ID))
+            id = csv.inteiro();
+        else
+            csv.pular();
+        if (lendo(colunas, Coluna.GENERATION))
+            generation = csv.inteiro();
+        else
+            csv.pular();
+        if (lendo(colunas, Coluna.NAME))
+            name = csv.texto();
+        else
+            csv.pular();
+        if (lendo(colunas, Coluna.DESCRIPTION))
+            description = csv.codigo();
+        else
+            csv.pular();
+
+        // Adiciona os tipos. O segundo é opcional.
+        if (lendo(colunas, Coluna.TYPES)) {
+            PokeType tipo = csv.tipo();
+            if (tipo == null)
+                throw new ArrayIndexOutOfBoundsException("Pokémon sem tipo");
+            type1 = (byte)tipo.ordinal();
+            type2 = ((tipo = csv.tipo()) != null) ? (byte)tipo.ordinal() : -1;
+        } else {
+            csv.pular();
+            csv.pular();
         }
 
+        // Adiciona as habilidades, sem os colchetes e aspas.
+        if (lendo(colunas, Coluna.ABILITIES))
+            abilities = csv.habilidades();
+        else
+            csv.pularHabilidades();
+
         // Adiciona peso e altura. Se estiverem vazios, devem ser 0.
-        String weightStr = s2[1];
-        String heightStr = s2[2];
-        weight = weightStr.isEmpty() ? 0 : Double.parseDouble(weightStr);
-        height = heightStr.isEmpty() ? 0 : Double.parseDouble(heightStr);
+        if (lendo(colunas, Coluna.WEIGHT))
+            weight = csv.decimal();
+        else
+            csv.pular();
+        if (lendo(colunas, Coluna.HEIGHT))
+            height = csv.decimal();
+        else
+            csv.pular();
 
         // Lê o determinante da probabilidade de captura e se é lendário ou não.
-        captureRate = Integer.parseInt(s2[3]);
-        isLegendary = (Integer.parseInt(s2[4]) == 1);
+        if (lendo(colunas, Coluna.CAPTURE_RATE))
+            captureRate = csv.inteiro();
+        else
+            csv.pular();
+        if (lendo(colunas, Coluna.IS_LEGENDARY))
+            isLegendary = (csv.inteiro() == 1);
+        else
+            csv.pular();
 
         // Adiciona data de captura.
-        String[] membrosData = s2[5].split("/");
-        captureDate = LocalDate.of(Integer.parseInt(membrosData[2]), // ano
-                                   Integer.parseInt(membrosData[1]), // mês
-                                   Integer.parseInt(membrosData[0])); // dia
+        if (lendo(colunas, Coluna.CAPTURE_DATE))
+            captureDate = csv.data();
+
+        lidas |= colunas;
+    }
+
+    private static boolean lendo(int colunas, Coluna c)
+    {
+        return (colunas & (1 << c.ordinal())) != 0;
+    }
+
+    static int mascara(Set<Coluna> colunas)
+    {
+        int res = 0;
+        for (Coluna c : colunas)
+            res |= 1 << c.ordinal();
+        return res;
+    }
+
+    // Marca a coluna `c` como lida, depois de um setter, e descarta a linha guardada.
+    private void alterado(Coluna c)
+    {
+        lidas |= 1 << c.ordinal();
+        linha = null;
+    }
+
+    // Garante que a coluna foi lida, lendo todas as que faltam se não foi.
+    private void exigir(Coluna c)
+    {
+        if (!lendo(lidas, c))
+            completar();
+    }
+
+    private void completar()
+    {
+        if (lidas != TODAS) {
+            ler(origem, origemIni, origemFim, TODAS & ~lidas);
+            origem = null;
+        }
     }
 
+    // Imprime a linha em UTF-8, sem passar por uma String, na saída com buffer. Com
+    // o cache ligado, as impressões seguintes só copiam a linha guardada.
     public void imprimir()
     {
-        System.out.println(this);
+        if (linha == null && cacheLinhas) {
+            Renderizador r = renderizar();
+            linha = Arrays.copyOf(r.bytes(), r.tamanho());
+        }
+
+        if (linha != null) {
+            Saida.linha(linha, 0, linha.length);
+        } else {
+            Renderizador r = renderizar();
+            Saida.linha(r.bytes(), 0, r.tamanho());
+        }
+    }
+
+    // Acrescenta a linha (sem a quebra) a `dst`, como imprimir() a escreveria. É
+    // sincronizado porque um Pokémon repetido na lista pode estar em duas fatias de
+    // Saida.imprimir(), e tanto a leitura preguiçosa quanto o cache o alteram.
+    synchronized Renderizador imprimir(Renderizador dst)
+    {
+        if (linha == null && cacheLinhas) {
+            Renderizador r = renderizar();
+            linha = Arrays.copyOf(r.bytes(), r.tamanho());
+        }
+
+        return (linha != null) ? dst.bytes(linha) : renderizar(dst);
     }
 
     @Override public String toString()
     {
-        String res = new String("[#");
-        res +=
-            id + " -> " + name + ": " + description + " - ['" +
-            types.get(0).toString().toLowerCase() +
-            ((types.size() == 2) ? "', '" + types.get(1).toString().toLowerCase() : "") +
-            "'] - ['" + abilities.get(0) + "'";
+        if (linha != null)
+            return new String(linha, StandardCharsets.UTF_8);
+        return renderizar().toString();
+    }
+
+    // Liga ou desliga o cache das linhas impressas (também ligado por
+    // -Dpokemon.cacheLinhas=true). Desligá-lo não descarta as linhas já guardadas.
+    public static void setCacheLinhas(boolean ligado)
+    {
+        cacheLinhas = ligado;
+    }
+
+    // Monta a linha no Renderizador da thread, com os textos do Dicionario já em
+    // bytes. Só é válida até a próxima chamada na mesma thread.
+    Renderizador renderizar()
+    {
+        return renderizar(Renderizador.local());
+    }
 
-        for (int i = 1; i < abilities.size(); ++i)
-            res += ", '" + abilities.get(i) + "'";
+    // Acrescenta a linha ao fim de `r`.
+    private Renderizador renderizar(Renderizador r)
+    {
+        completar();
+        r.texto("[#").inteiro(id).texto(" -> ").texto(name).texto(": ");
+        r.bytes(Dicionario.bytes(description)).texto(" - ['").tipo(PokeType.de(type1));
+        if (type2 >= 0)
+            r.texto("', '").tipo(PokeType.de(type2));
 
-        res += "] - " + weight + "kg - " + height + "m - " + captureRate + "% - " +
-               isLegendary() + " - " + generation + " gen] - " +
-               String.format("%02d/%02d/%04d", captureDate.getDayOfMonth(),
-                             captureDate.getMonthValue(), captureDate.getYear());
+        r.texto("'] - ['").bytes(Dicionario.bytes(abilities[0])).caractere('\'');
+        for (int i = 1; i < abilities.length; ++i)
+            r.texto(", '").bytes(Dicionario.bytes(abilities[i])).caractere('\'');
 
-        return res;
+        r.texto("] - ").real(weight).texto("kg - ").real(height).texto("m - ");
+        r.inteiro(captureRate).texto("% - ").booleano(isLegendary()).texto(" - ");
+        r.inteiro(generation).texto(" gen] - ").inteiro(getCaptureDay(), 2).caractere('/');
+        r.inteiro(getCaptureMonth(), 2).caractere('/').inteiro(getCaptureYear(), 4);
+
+        return r;
     }
 
     @Override public Pokemon clone()
     {
         try {
-            Pokemon c = (Pokemon)super.clone();
-
-            // Copia as listas, que são referências (Strings também são
-            // referências, mas são imutáveis, então não é necessário).
-            c.types = new ArrayList<>(this.types);
-            c.abilities = new ArrayList<>(this.abilities);
-
-            return c;
+            // O clone compartilha o vetor de habilidades: ele nunca é alterado no
+            // lugar (setAbilities troca o vetor inteiro, e getAbilities é só
+            // leitura), então a cópia só acontece, de fato, numa mudança. Os tipos
+            // são primitivos, e as Strings, imutáveis.
+            return (Pokemon)super.clone();
         } catch (CloneNotSupportedException e) {
             e.printStackTrace();
             throw new AssertionError(); // Nunca deve acontecer.
@@ -186,112 +373,269 @@ class Pokemon implements /* Comparable<Pokemon>, */ Cloneable
 
     public int getId()
     {
+        exigir(Coluna.ID);
         return id;
     }
 
     public void setId(int id)
     {
         this.id = id;
+        alterado(Coluna.ID);
     }
 
     public int getGeneration()
     {
+        exigir(Coluna.GENERATION);
         return generation;
     }
 
     public void setGeneration(int generation)
     {
         this.generation = generation;
+        alterado(Coluna.GENERATION);
     }
 
     public int getCaptureRate()
     {
+        exigir(Coluna.CAPTURE_RATE);
         return captureRate;
     }
 
     public void setCaptureRate(int captureRate)
     {
         this.captureRate = captureRate;
+        alterado(Coluna.CAPTURE_RATE);
     }
 
     public String getName()
     {
+        exigir(Coluna.NAME);
         return name;
     }
 
     public void setName(String name)
     {
         this.name = name;
+        this.rankTabela = null;
+        alterado(Coluna.NAME);
+    }
+
+    // Posição do nome na tabela atual de RankNomes, ou -1 se ele não estiver lá.
+    public int getNameRank()
+    {
+        exigir(Coluna.NAME);
+        RankNomes atual = RankNomes.atual();
+        if (atual == null)
+            return -1;
+        if (rankTabela != atual) {
+            nameRank = atual.rank(name);
+            rankTabela = atual;
+        }
+        return nameRank;
+    }
+
+    // Compara os nomes pelas posições, se as duas vierem da mesma tabela, ou como
+    // String.
+    int compararNome(Pokemon outro)
+    {
+        int a = this.getNameRank(), b = outro.getNameRank();
+        if (a >= 0 && b >= 0 && this.rankTabela == outro.rankTabela)
+            return Integer.compare(a, b);
+        return this.name.compareTo(outro.name);
     }
 
     public String getDescription()
     {
-        return description;
+        exigir(Coluna.DESCRIPTION);
+        return Dicionario.texto(description);
     }
 
     public void setDescription(String description)
     {
-        this.description = description;
+        this.description = Dicionario.codigo(description);
+        alterado(Coluna.DESCRIPTION);
+    }
+
+    // Descrições iguais têm o mesmo código.
+    public int getDescriptionCode()
+    {
+        exigir(Coluna.DESCRIPTION);
+        return description;
     }
 
+    // Retorna uma visão somente leitura dos tipos.
     public List<PokeType> getTypes()
     {
-        return types;
+        exigir(Coluna.TYPES);
+        return new AbstractList<PokeType>() {
+            @Override public PokeType get(int i)
+            {
+                Objects.checkIndex(i, size());
+                return PokeType.de((i == 0) ? type1 : type2);
+            }
+
+            @Override public int size()
+            {
+                return (type1 < 0) ? 0 : (type2 < 0) ? 1 : 2;
+            }
+        };
     }
 
     public void setTypes(List<PokeType> types)
     {
-        this.types = types;
+        guardarTipos(types);
+        alterado(Coluna.TYPES);
     }
 
+    // Posição do primeiro tipo na ordem alfabética, para comparar com um só int.
+    public int getTypeRank()
+    {
+        exigir(Coluna.TYPES);
+        return (type1 < 0) ? -1 : PokeType.RANK[type1];
+    }
+
+    private void guardarTipos(List<PokeType> types)
+    {
+        if (types.size() > 2)
+            throw new IllegalArgumentException("Mais de dois tipos: " + types);
+        type1 = types.isEmpty() ? -1 : (byte)types.get(0).ordinal();
+        type2 = (types.size() < 2) ? -1 : (byte)types.get(1).ordinal();
+    }
+
+    // Retorna uma visão somente leitura das habilidades.
     public List<String> getAbilities()
     {
-        return abilities;
+        exigir(Coluna.ABILITIES);
+        return new AbstractList<String>() {
+            @Override public String get(int i)
+            {
+                return Dicionario.texto(abilities[i]);
+            }
+
+            @Override public int size()
+            {
+                return abilities.length;
+            }
+        };
     }
 
     public void setAbilities(List<String> abilities)
     {
-        this.abilities = abilities;
+        this.abilities = Dicionario.codigos(abilities);
+        alterado(Coluna.ABILITIES);
+    }
+
+    // Habilidades iguais têm o mesmo código.
+    public int getAbilityCode(int i)
+    {
+        exigir(Coluna.ABILITIES);
+        return abilities[i];
     }
 
     public double getWeight()
     {
+        exigir(Coluna.WEIGHT);
         return weight;
     }
 
     public void setWeight(double weight)
     {
         this.weight = weight;
+        alterado(Coluna.WEIGHT);
     }
 
     public double getHeight()
     {
+        exigir(Coluna.HEIGHT);
         return height;
     }
 
     public void setHeight(double height)
     {
         this.height = height;
+        alterado(Coluna.HEIGHT);
     }
 
     public boolean isLegendary()
     {
+        exigir(Coluna.IS_LEGENDARY);
         return isLegendary;
     }
 
     public void setLegendary(boolean isLegendary)
     {
         this.isLegendary = isLegendary;
+        alterado(Coluna.IS_LEGENDARY);
     }
 
     public LocalDate getCaptureDate()
     {
-        return captureDate;
+        exigir(Coluna.CAPTURE_DATE);
+        if (captureDate == DATA_NULA)
+            return LocalDate.MIN;
+        return LocalDate.of(getCaptureYear(), getCaptureMonth(), getCaptureDay());
     }
 
     public void setCaptureDate(LocalDate captureDate)
+    {
+        this.captureDate = empacotar(captureDate);
+        alterado(Coluna.CAPTURE_DATE);
+    }
+
+    // Data de captura como aaaammdd, na mesma ordem das datas.
+    public int getPackedCaptureDate()
+    {
+        exigir(Coluna.CAPTURE_DATE);
+        return captureDate;
+    }
+
+    // Recebe a data como getPackedCaptureDate() a retorna.
+    void setPackedCaptureDate(int captureDate)
     {
         this.captureDate = captureDate;
+        alterado(Coluna.CAPTURE_DATE);
+    }
+
+    public int getCaptureYear()
+    {
+        exigir(Coluna.CAPTURE_DATE);
+        return (captureDate == DATA_NULA) ? LocalDate.MIN.getYear()
+                                          : Math.floorDiv(captureDate, 10000);
+    }
+
+    public int getCaptureMonth()
+    {
+        exigir(Coluna.CAPTURE_DATE);
+        return (captureDate == DATA_NULA) ? 1 : Math.floorMod(captureDate, 10000) / 100;
+    }
+
+    public int getCaptureDay()
+    {
+        exigir(Coluna.CAPTURE_DATE);
+        return (captureDate == DATA_NULA) ? 1 : Math.floorMod(captureDate, 100);
+    }
+
+    private static int empacotar(LocalDate data)
+    {
+        if (data.equals(LocalDate.MIN))
+            return DATA_NULA;
+        return Math.multiplyExact(data.getYear(), 10000) + data.getMonthValue() * 100 +
+               data.getDayOfMonth();
+    }
+
+    // Colunas do CSV, na ordem do arquivo.
+    static enum Coluna {
+        ID,
+        GENERATION,
+        NAME,
+        DESCRIPTION,
+        TYPES,
+        ABILITIES,
+        WEIGHT,
+        HEIGHT,
+        CAPTURE_RATE,
+        IS_LEGENDARY,
+        CAPTURE_DATE
     }
 
     // Tipos de Pokémon.
@@ -313,6 +657,1659 @@ class Pokemon implements /* Comparable<Pokemon>, */ Cloneable
         PSYCHIC,
         ROCK,
         STEEL,
-        WATER
+        WATER;
+
+        private static final PokeType[] TODOS = values();
+
+        // Posição de cada tipo (por ordinal) na ordem alfabética dos nomes. Hoje é
+        // a própria ordem da declaração, mas não dependemos disso.
+        static final int[] RANK = new int[TODOS.length];
+        static {
+            PokeType[] ordem = TODOS.clone();
+            Arrays.sort(ordem, (a, b) -> a.toString().compareTo(b.toString()));
+            for (int i = 0; i < ordem.length; ++i)
+                RANK[ordem[i].ordinal()] = i;
+        }
+
+        static PokeType de(int ordinal)
+        {
+            return TODOS[ordinal];
+        }
+    }
+}
+
+// Carrega o CSV de Pokémon mapeando o arquivo em memória, sem passar pelo Scanner.
+class LeitorCSV
+{
+    // Tamanho máximo de cada janela mapeada (um mapeamento não passa de 2 GiB).
+    static final long JANELA = 1L << 30;
+
+    // A partir desse tamanho, o arquivo é lido em paralelo, em pedaços de pelo
+    // menos MIN_PEDACO bytes.
+    private static final long MIN_PARALELO = 8L << 20;
+    private static final int MIN_PEDACO = 1 << 20;
+
+    private LeitorCSV()
+    {
+    }
+
+    public static List<Pokemon> ler(String caminho) throws IOException
+    {
+        // Usa o snapshot binário, se ele ainda corresponder ao CSV.
+        SnapshotCSV snapshot = SnapshotCSV.abrirSeValido(caminho);
+        if (snapshot != null)
+            return new ArrayList<Pokemon>(snapshot);
+
+        return lerCSV(caminho);
+    }
+
+    // Lê o CSV em si, ignorando qualquer snapshot.
+    static List<Pokemon> lerCSV(String caminho) throws IOException
+    {
+        try (FileChannel canal = FileChannel.open(Path.of(caminho), StandardOpenOption.READ)) {
+            boolean paralelo = canal.size() >= MIN_PARALELO &&
+                               ForkJoinPool.getCommonPoolParallelism() > 1;
+            return ler(canal, paralelo);
+        }
+    }
+
+    // Lê o arquivo inteiro em paralelo, independentemente do tamanho.
+    public static List<Pokemon> lerParalelo(String caminho) throws IOException
+    {
+        try (FileChannel canal = FileChannel.open(Path.of(caminho), StandardOpenOption.READ)) {
+            return ler(canal, true);
+        }
+    }
+
+    private static List<Pokemon> ler(FileChannel canal, boolean paralelo) throws IOException
+    {
+        List<Pokemon> pokemon = new ArrayList<Pokemon>(801);
+        ler(canal, 0, canal.size(), paralelo, pokemon);
+        return pokemon;
+    }
+
+    // Lê as linhas em [inicio, tamanho) do arquivo para `dst`. Se `inicio` for 0, a
+    // primeira linha (cabeçalho) é descartada.
+    static void ler(FileChannel canal, long inicio, long tamanho, boolean paralelo,
+                    List<Pokemon> dst) throws IOException
+    {
+        for (long pos = inicio; pos < tamanho;) {
+            int len = (int)Math.min(JANELA, tamanho - pos);
+            MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_ONLY, pos, len);
+
+            // Só processa até a última linha completa da janela.
+            int fim = (pos + len < tamanho) ? ultimaQuebra(buf, len) : len;
+
+            // Descarta a primeira linha (cabeçalho).
+            int ini = (pos == 0) ? Math.min(proximaQuebra(buf, 0, fim) + 1, fim) : 0;
+
+            if (paralelo)
+                lerParalelo(buf, ini, fim, dst);
+            else
+                lerLinhas(buf, ini, fim, dst);
+
+            pos += fim;
+        }
+    }
+
+    // Retorna a posição logo após o último '\n' em [inicio, tamanho) do arquivo, ou
+    // `inicio` se não houver nenhum.
+    static long fimCompleto(FileChannel canal, long inicio, long tamanho) throws IOException
+    {
+        ByteBuffer bloco = ByteBuffer.allocate(4096);
+
+        for (long fim = tamanho; fim > inicio;) {
+            long ini = Math.max(inicio, fim - bloco.capacity());
+            bloco.clear().limit((int)(fim - ini));
+            lerEm(canal, bloco, ini);
+
+            for (int i = bloco.position() - 1; i >= 0; --i)
+                if (bloco.get(i) == '\n')
+                    return ini + i + 1;
+            fim = ini;
+        }
+
+        return inicio;
+    }
+
+    // Divide [ini, fim) em pedaços alinhados a linhas, lê cada um no ForkJoinPool
+    // comum e os junta a `dst` na ordem do arquivo.
+    private static void lerParalelo(ByteBuffer buf, int ini, int fim, List<Pokemon> dst)
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int passo = Math.max(MIN_PEDACO, (fim - ini) / (4 * pool.getParallelism()) + 1);
+        List<ForkJoinTask<List<Pokemon>>> tarefas = new ArrayList<>();
+
+        for (int a = ini; a < fim;) {
+            int b = fim;
+            if ((long)a + passo < fim)
+                b = Math.min(proximaQuebra(buf, a + passo, fim) + 1, fim);
+
+            int pedacoIni = a, pedacoFim = b;
+            tarefas.add(pool.submit(() -> {
+                List<Pokemon> pedaco = new ArrayList<>();
+                lerLinhas(buf, pedacoIni, pedacoFim, pedaco);
+                return pedaco;
+            }));
+            a = b;
+        }
+
+        for (ForkJoinTask<List<Pokemon>> t : tarefas)
+            dst.addAll(t.join());
+    }
+
+    // Lê cada linha não vazia em [ini, fim) como um Pokémon.
+    private static void lerLinhas(ByteBuffer buf, int ini, int fim, List<Pokemon> dst)
+    {
+        while (ini < fim) {
+            int nl = proximaQuebra(buf, ini, fim);
+            int fimLinha = (nl > ini && buf.get(nl - 1) == '\r') ? nl - 1 : nl;
+
+            if (fimLinha > ini)
+                dst.add(new Pokemon(buf, ini, fimLinha));
+
+            ini = nl + 1;
+        }
+    }
+
+    // Preenche `dst` com os bytes do arquivo a partir de `pos`, até enchê-lo ou
+    // chegar ao fim do arquivo.
+    static void lerEm(FileChannel canal, ByteBuffer dst, long pos) throws IOException
+    {
+        long ini = pos - dst.position();
+        while (dst.hasRemaining() && canal.read(dst, ini + dst.position()) >= 0)
+            continue;
+    }
+
+    // Retorna a posição do próximo '\n' em [ini, fim), ou `fim` se não houver.
+    static int proximaQuebra(ByteBuffer buf, int ini, int fim)
+    {
+        return Delimitadores.proximo(buf, ini, fim, Delimitadores.QUEBRA);
+    }
+
+    // Retorna a posição logo após o último '\n' nos `len` primeiros bytes.
+    static int ultimaQuebra(ByteBuffer buf, int len) throws IOException
+    {
+        int fim = len;
+        while (fim > 0 && buf.get(fim - 1) != '\n')
+            --fim;
+        if (fim == 0)
+            throw new IOException("Linha maior que a janela de mapeamento");
+        return fim;
+    }
+}
+
+// Mantém em memória os Pokémon de um CSV que só cresce por acréscimos, relendo
+// apenas as linhas novas. Relê tudo se o arquivo for trocado (outro inode),
+// truncado, ou se mudarem os últimos ASSINATURA bytes já lidos; uma reescrita
+// que só altere bytes antes deles, mantendo o tamanho, não é percebida. Uma
+// última linha sem '\n' é considerada incompleta e fica para a próxima leitura.
+class LeitorIncremental implements AutoCloseable
+{
+    // Quantos bytes antes do fim lido entram na assinatura.
+    private static final int ASSINATURA = 256;
+
+    private final Path caminho;
+    private final WatchService observador;
+    private final List<Pokemon> pokemon = new ArrayList<Pokemon>(801);
+
+    // Cópia imutável de `pokemon`, trocada a cada atualização, para quem lê de
+    // outra thread enquanto aguardar() atualiza.
+    private volatile List<Pokemon> publicados = List.of();
+
+    private Object chave; // Identidade do arquivo lido (inode, por exemplo).
+    private long lido = 0; // Bytes já lidos, sempre até o fim de uma linha.
+    private long assinatura; // CRC32C dos últimos bytes lidos, contra reescritas.
+
+    public LeitorIncremental(String caminho) throws IOException
+    {
+        this.caminho = Path.of(caminho).toAbsolutePath();
+        this.observador = FileSystems.getDefault().newWatchService();
+        this.caminho.getParent().register(observador, StandardWatchEventKinds.ENTRY_CREATE,
+                                          StandardWatchEventKinds.ENTRY_MODIFY);
+        atualizar();
+    }
+
+    // Retorna os Pokémon lidos até a última atualização. A lista não muda depois.
+    public List<Pokemon> getPokemon()
+    {
+        return publicados;
+    }
+
+    // Lê o que mudou no arquivo desde a última leitura. Retorna se algo mudou.
+    public synchronized boolean atualizar() throws IOException
+    {
+        try (FileChannel canal = FileChannel.open(caminho, StandardOpenOption.READ)) {
+            Object chaveAtual =
+                Files.readAttributes(caminho, BasicFileAttributes.class).fileKey();
+            long tamanho = canal.size();
+
+            // Arquivo novo, truncado ou reescrito: recomeça do zero.
+            boolean recomecar = !Objects.equals(chave, chaveAtual) || tamanho < lido ||
+                                assinatura != assinar(canal, lido);
+            if (recomecar) {
+                pokemon.clear();
+                chave = chaveAtual;
+                lido = 0;
+            }
+
+            long fim = LeitorCSV.fimCompleto(canal, lido, tamanho);
+            if (fim == lido && !recomecar)
+                return false;
+
+            LeitorCSV.ler(canal, lido, fim, false, pokemon);
+            lido = fim;
+            assinatura = assinar(canal, lido);
+            publicados = List.copyOf(pokemon);
+            return true;
+        }
+    }
+
+    // Bloqueia até o arquivo mudar e lê as mudanças. Retorna se algo mudou.
+    public boolean aguardar() throws IOException, InterruptedException
+    {
+        WatchKey evento = observador.take();
+        boolean nosso = false;
+
+        for (WatchEvent<?> e : evento.pollEvents())
+            if (e.kind() == StandardWatchEventKinds.OVERFLOW ||
+                caminho.getFileName().equals(e.context()))
+                nosso = true;
+        evento.reset();
+
+        return nosso && atualizar();
+    }
+
+    @Override public void close() throws IOException
+    {
+        observador.close();
+    }
+
+    // CRC32C dos até ASSINATURA bytes que terminam em `fim`.
+    private static long assinar(FileChannel canal, long fim) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocate((int)Math.min(ASSINATURA, fim));
+        LeitorCSV.lerEm(canal, bytes, fim - bytes.capacity());
+
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.flip());
+        return crc.getValue();
+    }
+}
+
+// Lista somente leitura dos Pokémon do CSV que guarda apenas o início de cada
+// linha e só lê um Pokémon quando ele é acessado.
+class IndiceCSV extends AbstractList<Pokemon>
+{
+    // Janelas mapeadas do arquivo, onde cada uma termina e sua primeira linha.
+    private ByteBuffer[] janelas = new ByteBuffer[1];
+    private int[] fimJanela = new int[1];
+    private int[] primeira = new int[1];
+    private int numJanelas = 0;
+
+    // Início de cada linha (exceto o cabeçalho), relativo à sua janela.
+    private int[] inicios = new int[1024];
+    private int n = 0;
+
+    // Colunas lidas de imediato em cada Pokémon (as outras só quando pedidas).
+    private final int colunas;
+
+    private IndiceCSV(int colunas)
+    {
+        this.colunas = colunas;
+    }
+
+    // Abre o snapshot binário, se ele ainda corresponder ao CSV, ou indexa o CSV.
+    public static List<Pokemon> abrir(String caminho) throws IOException
+    {
+        return abrir(caminho, EnumSet.allOf(Pokemon.Coluna.class));
+    }
+
+    // Como abrir(caminho), mas, se for ler o CSV, os Pokémon só decodificam de
+    // imediato as `colunas` dadas.
+    public static List<Pokemon> abrir(String caminho, Set<Pokemon.Coluna> colunas)
+        throws IOException
+    {
+        SnapshotCSV snapshot = SnapshotCSV.abrirSeValido(caminho);
+        return (snapshot != null) ? snapshot : indexar(caminho, colunas);
+    }
+
+    public static IndiceCSV indexar(String caminho) throws IOException
+    {
+        return indexar(caminho, EnumSet.allOf(Pokemon.Coluna.class));
+    }
+
+    public static IndiceCSV indexar(String caminho, Set<Pokemon.Coluna> colunas)
+        throws IOException
+    {
+        IndiceCSV indice = new IndiceCSV(Pokemon.mascara(colunas));
+
+        // O mapeamento continua válido depois que o canal é fechado.
+        try (FileChannel canal = FileChannel.open(Path.of(caminho), StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+
+            for (long pos = 0; pos < tamanho;) {
+                int len = (int)Math.min(LeitorCSV.JANELA, tamanho - pos);
+                MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                int fim = (pos + len < tamanho) ? LeitorCSV.ultimaQuebra(buf, len) : len;
+
+                // Descarta a primeira linha (cabeçalho).
+                int ini = (pos == 0) ? Math.min(LeitorCSV.proximaQuebra(buf, 0, fim) + 1, fim)
+                                     : 0;
+
+                indice.indexar(buf, ini, fim);
+                pos += fim;
+            }
+        }
+
+        return indice;
+    }
+
+    // Guarda o início de cada linha não vazia em [ini, fim).
+    private void indexar(ByteBuffer buf, int ini, int fim)
+    {
+        if (numJanelas == janelas.length) {
+            janelas = Arrays.copyOf(janelas, 2 * numJanelas);
+            fimJanela = Arrays.copyOf(fimJanela, 2 * numJanelas);
+            primeira = Arrays.copyOf(primeira, 2 * numJanelas);
+        }
+        janelas[numJanelas] = buf;
+        fimJanela[numJanelas] = fim;
+        primeira[numJanelas] = n;
+        ++numJanelas;
+
+        while (ini < fim) {
+            int nl = LeitorCSV.proximaQuebra(buf, ini, fim);
+
+            if (nl > ini && !(nl == ini + 1 && buf.get(ini) == '\r')) {
+                if (n == inicios.length)
+                    inicios = Arrays.copyOf(inicios, 2 * n);
+                inicios[n++] = ini;
+            }
+
+            ini = nl + 1;
+        }
+    }
+
+    @Override public Pokemon get(int i)
+    {
+        Objects.checkIndex(i, n);
+        int w = janela(i);
+        return new Pokemon(janelas[w], inicios[i], fim(i, w), colunas);
+    }
+
+    // Lê só o id (a primeira coluna) da linha `i`, sem criar o Pokémon.
+    public int id(int i)
+    {
+        Objects.checkIndex(i, n);
+        int w = janela(i);
+        return AnalisadorCSV.local(janelas[w], inicios[i], fim(i, w)).inteiro();
+    }
+
+    private int janela(int i)
+    {
+        int w = numJanelas - 1;
+        while (primeira[w] > i)
+            --w;
+        return w;
+    }
+
+    // Fim da linha `i`, que está na janela `w`, sem o '\r' de uma quebra "\r\n".
+    private int fim(int i, int w)
+    {
+        ByteBuffer buf = janelas[w];
+        int fim = LeitorCSV.proximaQuebra(buf, inicios[i], fimJanela[w]);
+        if (buf.get(fim - 1) == '\r')
+            --fim;
+        return fim;
+    }
+
+    @Override public int size()
+    {
+        return n;
+    }
+}
+
+// Índice de id para linha, para ids esparsos e fora de ordem (em vez de supor que
+// o id é o número da linha). Usa endereçamento aberto em dois vetores de int, sem
+// objetos por entrada: 8 bytes por posição, com a tabela no máximo 3/4 cheia.
+final class IndiceIds
+{
+    private static final int VAZIO = Integer.MIN_VALUE;
+
+    private final int[] ids, linhas;
+    private final int mascara;
+
+    private IndiceIds(int n)
+    {
+        // Menor potência de 2 que deixa a tabela no máximo 3/4 cheia.
+        int capacidade = Integer.highestOneBit(Math.max(2, (int)(4L * n / 3) + 1) - 1) << 1;
+        ids = new int[capacidade];
+        linhas = new int[capacidade];
+        mascara = capacidade - 1;
+        Arrays.fill(ids, VAZIO);
+    }
+
+    // Indexa o id de cada Pokémon. No índice do CSV e no snapshot, o id é lido
+    // direto da linha, sem criar o Pokémon. Num id repetido, vale a primeira linha.
+    public static IndiceIds de(List<Pokemon> pokemon)
+    {
+        IndiceIds res = new IndiceIds(pokemon.size());
+
+        for (int i = 0; i < pokemon.size(); ++i) {
+            int id;
+            if (pokemon instanceof IndiceCSV)
+                id = ((IndiceCSV)pokemon).id(i);
+            else if (pokemon instanceof SnapshotCSV)
+                id = ((SnapshotCSV)pokemon).id(i);
+            else
+                id = pokemon.get(i).getId();
+
+            res.inserir(id, i);
+        }
+
+        return res;
+    }
+
+    private void inserir(int id, int linha)
+    {
+        if (id == VAZIO)
+            throw new IllegalArgumentException("Id inválido: " + id);
+
+        int i = espalhar(id);
+        while (ids[i] != VAZIO && ids[i] != id)
+            i = (i + 1) & mascara;
+
+        if (ids[i] == VAZIO) {
+            ids[i] = id;
+            linhas[i] = linha;
+        }
+    }
+
+    // Retorna a linha do Pokémon com o `id` dado.
+    public int linha(int id)
+    {
+        for (int i = espalhar(id); ids[i] != VAZIO; i = (i + 1) & mascara)
+            if (ids[i] == id)
+                return linhas[i];
+
+        throw new NoSuchElementException("Id não encontrado: " + id);
+    }
+
+    // Ids costumam ser sequenciais; a multiplicação os espalha pela tabela.
+    private int espalhar(int id)
+    {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+}
+
+// Snapshot binário do CSV, lido sem nenhuma análise de texto. Para gerá-lo ao lado
+// do CSV (com extensão .snap), execute `java SnapshotCSV pokemon.csv`.
+//
+// Formato (big-endian): cabeçalho de CABECALHO bytes, os registros de tamanho fixo,
+// as listas de habilidades (quantidade seguida dos códigos) e o dicionário de
+// textos (posição de cada texto, seguida dos bytes UTF-8 de todos eles).
+class SnapshotCSV extends AbstractList<Pokemon>
+{
+    static final String EXTENSAO = ".snap";
+    private static final int MAGICO = 0x504b534e; // "PKSN"
+    private static final int VERSAO = 2;
+
+    // Cabeçalho: mágico, versão, tamanho, data de modificação e CRC32C do CSV,
+    // número de registros e de textos, e o início de cada seção.
+    private static final int CABECALHO = 64;
+
+    // Registro, com os doubles primeiro, como em registro.c: peso, altura, id,
+    // nome, descrição, lista de habilidades, data (aaaammdd, como em
+    // Pokemon.getPackedCaptureDate()), geração, taxa de captura, tipos (-1 se
+    // ausente), lendário e bytes de alinhamento.
+    private static final int REGISTRO = 48;
+
+    private final ByteBuffer buf;
+    private final int n, listas, posicoes, textos;
+
+    private static final Pokemon.PokeType[] TIPOS = Pokemon.PokeType.values();
+    private static final byte[] ZEROS = new byte[CABECALHO];
+
+    private SnapshotCSV(ByteBuffer buf)
+    {
+        this.buf = buf;
+        this.n = buf.getInt(32);
+        this.listas = buf.getInt(40);
+        this.posicoes = buf.getInt(44);
+        this.textos = buf.getInt(48);
+    }
+
+    // Converte o CSV dado (ou o padrão) em snapshot.
+    public static void main(String[] args)
+    {
+        try {
+            escrever((args.length > 0) ? args[0] : "/tmp/pokemon.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Abre o snapshot de `caminho` se ele existir e corresponder ao CSV atual, ou
+    // retorna null. Tamanho e data de modificação bastam; se só a data mudou, o
+    // CRC32C do CSV decide.
+    static SnapshotCSV abrirSeValido(String caminho)
+    {
+        Path csv = Path.of(caminho), snap = Path.of(caminho + EXTENSAO);
+        if (!Files.isRegularFile(snap))
+            return null;
+
+        try (FileChannel canal = FileChannel.open(snap, StandardOpenOption.READ)) {
+            if (canal.size() < CABECALHO || canal.size() > Integer.MAX_VALUE)
+                return null;
+
+            MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (buf.getInt(0) != MAGICO || buf.getInt(4) != VERSAO ||
+                buf.getLong(8) != Files.size(csv))
+                return null;
+            if (buf.getLong(16) != Files.getLastModifiedTime(csv).toMillis() &&
+                buf.getLong(24) != crc(csv))
+                return null;
+            if (!estruturaValida(buf, canal.size()))
+                return null;
+
+            return new SnapshotCSV(buf);
+        } catch (IOException e) {
+            return null; // Snapshot ilegível: o CSV é lido normalmente.
+        }
+    }
+
+    // Confere se as seções do cabeçalho estão em ordem e cabem no arquivo, para um
+    // snapshot truncado ou corrompido não ser lido fora dos limites.
+    private static boolean estruturaValida(ByteBuffer buf, long tamanho)
+    {
+        long n = buf.getInt(32), numTextos = buf.getInt(36);
+        long listas = buf.getInt(40), posicoes = buf.getInt(44), textos = buf.getInt(48);
+        if (n < 0 || numTextos < 0 || CABECALHO + n * REGISTRO > listas ||
+            listas > posicoes || posicoes + 4 * (numTextos + 1) > textos ||
+            textos > tamanho)
+            return false;
+
+        // A última posição é o fim dos textos.
+        long fimTextos = textos + buf.getInt((int)(posicoes + 4 * numTextos));
+        return fimTextos >= textos && fimTextos <= tamanho;
+    }
+
+    public static void escrever(String caminho) throws IOException
+    {
+        Path csv = Path.of(caminho);
+        long tamanho = Files.size(csv);
+        long modificacao = Files.getLastModifiedTime(csv).toMillis();
+        long crc = crc(csv);
+        List<Pokemon> pokemon = LeitorCSV.lerCSV(caminho);
+
+        // Monta o dicionário de textos (nomes, descrições e habilidades).
+        Map<String, Integer> codigos = new HashMap<>();
+        List<byte[]> textos = new ArrayList<>();
+        long numListas = 0, numBytes = 0;
+        for (Pokemon p : pokemon) {
+            numBytes += codificar(p.getName(), codigos, textos);
+            numBytes += codificar(p.getDescription(), codigos, textos);
+            for (String a : p.getAbilities())
+                numBytes += codificar(a, codigos, textos);
+            numListas += 1 + p.getAbilities().size();
+        }
+
+        long listas = CABECALHO + (long)REGISTRO * pokemon.size();
+        long posicoes = listas + 4 * numListas;
+        long inicioTextos = posicoes + 4L * (textos.size() + 1);
+        if (inicioTextos + numBytes > Integer.MAX_VALUE)
+            throw new IOException("Snapshot maior que 2 GiB");
+
+        Path tmp = Path.of(caminho + EXTENSAO + ".tmp");
+        try (DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGICO);
+            out.writeInt(VERSAO);
+            out.writeLong(tamanho);
+            out.writeLong(modificacao);
+            out.writeLong(crc);
+            out.writeInt(pokemon.size());
+            out.writeInt(textos.size());
+            out.writeInt((int)listas);
+            out.writeInt((int)posicoes);
+            out.writeInt((int)inicioTextos);
+            out.write(ZEROS, 0, CABECALHO - 52);
+
+            int lista = 0;
+            for (Pokemon p : pokemon) {
+                List<Pokemon.PokeType> tipos = p.getTypes();
+                out.writeDouble(p.getWeight());
+                out.writeDouble(p.getHeight());
+                out.writeInt(p.getId());
+                out.writeInt(codigos.get(p.getName()));
+                out.writeInt(codigos.get(p.getDescription()));
+                out.writeInt(lista);
+                out.writeInt(p.getPackedCaptureDate());
+                out.writeShort(p.getGeneration());
+                out.writeShort(p.getCaptureRate());
+                out.writeByte(tipos.get(0).ordinal());
+                out.writeByte((tipos.size() > 1) ? tipos.get(1).ordinal() : -1);
+                out.writeByte(p.isLegendary() ? 1 : 0);
+                out.write(ZEROS, 0, REGISTRO - 43);
+                lista += 1 + p.getAbilities().size();
+            }
+
+            for (Pokemon p : pokemon) {
+                out.writeInt(p.getAbilities().size());
+                for (String a : p.getAbilities())
+                    out.writeInt(codigos.get(a));
+            }
+
+            int pos = 0;
+            for (byte[] t : textos) {
+                out.writeInt(pos);
+                pos += t.length;
+            }
+            out.writeInt(pos);
+
+            for (byte[] t : textos)
+                out.write(t);
+        }
+
+        Files.move(tmp, Path.of(caminho + EXTENSAO), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Dá um código ao texto, se ainda não tiver, e retorna quantos bytes ele somou.
+    private static int codificar(String s, Map<String, Integer> codigos, List<byte[]> textos)
+    {
+        if (codigos.containsKey(s))
+            return 0;
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        codigos.put(s, textos.size());
+        textos.add(bytes);
+        return bytes.length;
+    }
+
+    // CRC32C do arquivo inteiro.
+    private static long crc(Path arquivo) throws IOException
+    {
+        CRC32C crc = new CRC32C();
+
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            for (long pos = 0; pos < tamanho; pos += LeitorCSV.JANELA) {
+                long len = Math.min(LeitorCSV.JANELA, tamanho - pos);
+                crc.update(canal.map(FileChannel.MapMode.READ_ONLY, pos, len));
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    @Override public Pokemon get(int i)
+    {
+        Objects.checkIndex(i, n);
+        int r = CABECALHO + i * REGISTRO;
+
+        List<Pokemon.PokeType> tipos = new ArrayList<>(2);
+        tipos.add(TIPOS[buf.get(r + 40)]);
+        if (buf.get(r + 41) >= 0)
+            tipos.add(TIPOS[buf.get(r + 41)]);
+
+        int lista = listas + 4 * buf.getInt(r + 28);
+        List<String> habilidades = new ArrayList<>(buf.getInt(lista));
+        for (int j = 1; j <= buf.getInt(lista); ++j)
+            habilidades.add(texto(buf.getInt(lista + 4 * j)));
+
+        // A data já vem empacotada, sem passar por um LocalDate.
+        Pokemon p = new Pokemon(buf.getInt(r + 16), buf.getShort(r + 36),
+                                texto(buf.getInt(r + 20)), texto(buf.getInt(r + 24)), tipos,
+                                habilidades, buf.getDouble(r), buf.getDouble(r + 8),
+                                buf.getShort(r + 38), buf.get(r + 42) == 1, LocalDate.MIN);
+        p.setPackedCaptureDate(buf.getInt(r + 32));
+        return p;
+    }
+
+    // Lê só o id do registro `i`, sem criar o Pokémon.
+    public int id(int i)
+    {
+        Objects.checkIndex(i, n);
+        return buf.getInt(CABECALHO + i * REGISTRO + 16);
+    }
+
+    @Override public int size()
+    {
+        return n;
+    }
+
+    private String texto(int codigo)
+    {
+        int ini = textos + buf.getInt(posicoes + 4 * codigo);
+        int len = textos + buf.getInt(posicoes + 4 * (codigo + 1)) - ini;
+        byte[] bytes = new byte[len];
+        buf.get(ini, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+
+// As ordens usadas pelos programas, pelo campo principal e depois pelo nome. O
+// ordinal vai no cabeçalho da saída binária.
+enum Ordem
+{
+    NAME, TYPE, HEIGHT, CAPTURE_RATE, CAPTURE_DATE, GENERATION;
+
+    // Bytes do campo principal na saída binária: o rank do tipo cabe em um, a
+    // altura é um double, e os outros campos são ints.
+    int largura()
+    {
+        if (this == NAME)
+            return 0;
+        if (this == TYPE)
+            return 1;
+        if (this == HEIGHT)
+            return 8;
+        return 4;
+    }
+}
+
+// Posição de cada nome na ordem alfabética, para os desempates por nome custarem
+// uma comparação de int. Cada tabela é imutável; construir() troca a atual, e as
+// posições só são comparadas entre Pokémon ranqueados pela mesma tabela.
+final class RankNomes
+{
+    private static volatile RankNomes atual;
+
+    private final Map<String, Integer> ranks;
+
+    private RankNomes(Map<String, Integer> ranks)
+    {
+        this.ranks = ranks;
+    }
+
+    // Ordena os nomes distintos de `pokemon` uma vez e passa a usar essa tabela.
+    static void construir(List<Pokemon> pokemon)
+    {
+        TreeSet<String> nomes = new TreeSet<>();
+        for (Pokemon p : pokemon)
+            nomes.add(p.getName());
+
+        Map<String, Integer> ranks = new HashMap<>(2 * nomes.size());
+        for (String nome : nomes)
+            ranks.put(nome, ranks.size());
+        atual = new RankNomes(ranks);
+    }
+
+    static RankNomes atual()
+    {
+        return atual;
+    }
+
+    // Posição do nome, ou -1 se ele não estava entre os ordenados.
+    int rank(String nome)
+    {
+        Integer r = ranks.get(nome);
+        return (r == null) ? -1 : r;
+    }
+}
+
+// Monta linhas de saída direto num vetor de bytes UTF-8 reaproveitado, sem
+// concatenar Strings nem chamar String.format. Cada thread tem o seu.
+final class Renderizador
+{
+    private static final ThreadLocal<Renderizador> LOCAL =
+        ThreadLocal.withInitial(Renderizador::new);
+
+    // Nomes dos tipos em minúsculas, como na saída.
+    private static final byte[][] TIPOS = new byte[Pokemon.PokeType.values().length][];
+    static {
+        for (Pokemon.PokeType t : Pokemon.PokeType.values())
+            TIPOS[t.ordinal()] = t.toString().toLowerCase().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final long[] POT10 = {
+        1L,       10L,       100L,       1000L,       10000L,
+        100000L,  1000000L,  10000000L,  100000000L,
+    };
+
+    private byte[] buf;
+    private int tam = 0;
+
+    private Renderizador()
+    {
+        this(256);
+    }
+
+    // Um renderizador próprio, fora do da thread, para acumular várias linhas.
+    Renderizador(int capacidade)
+    {
+        buf = new byte[capacidade];
+    }
+
+    // Retorna o renderizador da thread atual, vazio.
+    static Renderizador local()
+    {
+        Renderizador r = LOCAL.get();
+        r.tam = 0;
+        return r;
+    }
+
+    byte[] bytes()
+    {
+        return buf;
+    }
+
+    int tamanho()
+    {
+        return tam;
+    }
+
+    @Override public String toString()
+    {
+        return new String(buf, 0, tam, StandardCharsets.UTF_8);
+    }
+
+    Renderizador bytes(byte[] b)
+    {
+        garantir(b.length);
+        System.arraycopy(b, 0, buf, tam, b.length);
+        tam += b.length;
+        return this;
+    }
+
+    Renderizador tipo(Pokemon.PokeType t)
+    {
+        return bytes(TIPOS[t.ordinal()]);
+    }
+
+    Renderizador caractere(char c)
+    {
+        garantir(1);
+        buf[tam++] = (byte)c;
+        return this;
+    }
+
+    // Codifica a String em UTF-8, char a char.
+    Renderizador texto(String s)
+    {
+        garantir(3 * s.length());
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                buf[tam++] = (byte)c;
+            } else if (c < 0x800) {
+                buf[tam++] = (byte)(0xC0 | (c >> 6));
+                buf[tam++] = (byte)(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() &&
+                       Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[tam++] = (byte)(0xF0 | (cp >> 18));
+                buf[tam++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                buf[tam++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                buf[tam++] = (byte)(0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[tam++] = '?'; // Como String.getBytes, num surrogate sozinho.
+            } else {
+                buf[tam++] = (byte)(0xE0 | (c >> 12));
+                buf[tam++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                buf[tam++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    Renderizador inteiro(long v)
+    {
+        return inteiro(v, 1);
+    }
+
+    // Escreve `v` com pelo menos `largura` caracteres (contando o sinal),
+    // completando com zeros à esquerda, como "%0<largura>d".
+    Renderizador inteiro(long v, int largura)
+    {
+        garantir(21 + largura);
+        if (v < 0) {
+            buf[tam++] = '-';
+            --largura;
+        }
+
+        // Dígitos do menos significativo para o mais, sem passar por long positivo
+        // (Long.MIN_VALUE não teria).
+        int ini = tam;
+        do {
+            buf[tam++] = (byte)('0' + Math.abs(v % 10));
+            v /= 10;
+        } while (v != 0);
+        while (tam - ini < largura)
+            buf[tam++] = '0';
+
+        for (int i = ini, j = tam - 1; i < j; ++i, --j) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        return this;
+    }
+
+    Renderizador booleano(boolean b)
+    {
+        return b ? caractere('t').caractere('r').caractere('u').caractere('e')
+                 : caractere('f').caractere('a').caractere('l').caractere('s').caractere('e');
+    }
+
+    // Escreve o double exatamente como Double.toString. Em [1e-3, 1e7), acha o
+    // menor número de casas decimais (até 8) cujo valor arredondado volta ao mesmo
+    // double, e escreve esse decimal; fora disso (notação científica) ou se nenhum
+    // servir, usa o próprio Double.toString.
+    Renderizador real(double x)
+    {
+        if (x == 0) {
+            if (Double.doubleToRawLongBits(x) != 0)
+                caractere('-');
+            return caractere('0').caractere('.').caractere('0');
+        }
+
+        double abs = Math.abs(x);
+        if (abs >= 1e-3 && abs < 1e7) {
+            for (int casas = 1; casas < POT10.length; ++casas) {
+                long m = Math.round(abs * POT10[casas]);
+                if (m / (double)POT10[casas] != abs)
+                    continue;
+
+                // Como `casas` é a menor possível, o último dígito só é zero em
+                // "x.0", que é como Double.toString escreve os inteiros.
+                if (x < 0)
+                    caractere('-');
+                inteiro(m / POT10[casas]).caractere('.');
+                return inteiro(m % POT10[casas], casas);
+            }
+        }
+
+        return texto(Double.toString(x));
+    }
+
+    void escrever(OutputStream out) throws IOException
+    {
+        out.write(buf, 0, tam);
+    }
+
+    private void garantir(int mais)
+    {
+        if (tam + mais > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(2 * buf.length, tam + mais));
+    }
+}
+
+// Saída padrão com buffer: as linhas se acumulam num ByteBuffer direto grande e vão
+// para o FileChannel de stdout em blocos, quando ele enche ou em descarregar(), em
+// vez de uma chamada sincronizada (e um flush) do PrintStream por linha.
+final class Saida
+{
+    private static final ByteBuffer BUF = ByteBuffer.allocateDirect(1 << 20);
+    private static final FileChannel CANAL =
+        new FileOutputStream(FileDescriptor.out).getChannel();
+    private static final byte[] QUEBRA =
+        System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    // Abaixo de MIN_PARALELO linhas, imprimir() nem divide a lista.
+    private static final int MIN_PARALELO = 4096;
+    private static final int MIN_FATIA = 1024;
+
+    // Formato do resultado das ordenações, escolhido por -Dpokemon.saida: "texto"
+    // (o padrão, as linhas de pub.out), "ids" ou "binario".
+    enum Formato
+    {
+        TEXTO, IDS, BINARIO;
+
+        // O formato pedido na propriedade. Os programas de ordenação o leem antes
+        // de abrir o CSV, para um valor inválido não custar a leitura.
+        static Formato escolhido()
+        {
+            String nome = System.getProperty("pokemon.saida", "texto");
+            for (Formato f : values())
+                if (f.name().equalsIgnoreCase(nome))
+                    return f;
+            throw new IllegalArgumentException("Formato de saída desconhecido: " + nome +
+                                               " (use texto, ids ou binario)");
+        }
+    }
+
+    // Início ("PKSR") do cabeçalho das saídas binárias.
+    private static final int MAGICO = 0x504B5352;
+
+    // Se uma escrita em stdout já falhou. Guardado por Saida.class.
+    private static boolean falhou;
+
+    static {
+        // Nada fica no buffer, mesmo se o programa terminar sem descarregar.
+        Runtime.getRuntime().addShutdownHook(new Thread(Saida::descarregar));
+    }
+
+    private Saida()
+    {
+    }
+
+    static synchronized void escrever(byte[] b, int ini, int len)
+    {
+        while (len > 0) {
+            if (!BUF.hasRemaining())
+                descarregar();
+
+            int n = Math.min(len, BUF.remaining());
+            BUF.put(b, ini, n);
+            ini += n;
+            len -= n;
+        }
+    }
+
+    // Escreve b[ini, ini + len) seguido da quebra de linha, como println.
+    static synchronized void linha(byte[] b, int ini, int len)
+    {
+        escrever(b, ini, len);
+        escrever(QUEBRA, 0, QUEBRA.length);
+    }
+
+    static void linha(String s)
+    {
+        Renderizador r = Renderizador.local().texto(s);
+        linha(r.bytes(), 0, r.tamanho());
+    }
+
+    // Imprime os Pokémon na ordem da lista. Em listas grandes, cada fatia contígua é
+    // renderizada no seu próprio buffer no ForkJoinPool comum, e os buffers são
+    // escritos na ordem das fatias; só algumas fatias ficam pendentes por vez, para
+    // não guardar a saída inteira na memória.
+    static void imprimir(List<Pokemon> lista)
+    {
+        int n = lista.size();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        if (n < MIN_PARALELO || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            for (Pokemon p : lista)
+                p.imprimir();
+            return;
+        }
+
+        int passo = Math.max(MIN_FATIA, n / (4 * pool.getParallelism()) + 1);
+        int janela = 2 * pool.getParallelism();
+        ArrayDeque<ForkJoinTask<Renderizador>> pendentes = new ArrayDeque<>();
+
+        for (int a = 0; a < n || !pendentes.isEmpty();) {
+            if (a < n && pendentes.size() < janela) {
+                int ini = a, fim = Math.min(n, a + passo);
+                pendentes.add(pool.submit(() -> renderizar(lista.subList(ini, fim))));
+                a = fim;
+            } else {
+                Renderizador r = pendentes.poll().join();
+                escrever(r.bytes(), 0, r.tamanho());
+            }
+        }
+    }
+
+    // Imprime o resultado de uma ordenação pela `ordem` no `formato` dado. Nos
+    // binários, tudo é big-endian, como no DataOutputStream. O cabeçalho tem o
+    // MAGICO (int), o ordinal do Formato (byte), o da Ordem (byte) e a quantidade de
+    // Pokémon (int). Depois dele, "ids" tem só o id (int) de cada um, na ordem; e
+    // "binario" tem um registro por Pokémon: o tamanho do resto do registro
+    // (unsigned short), o id (int), o campo principal da ordem e o nome em UTF-8.
+    static void imprimir(List<Pokemon> lista, Ordem ordem, Formato formato)
+    {
+        if (formato == Formato.TEXTO)
+            imprimir(lista);
+        else
+            imprimirBinario(lista, ordem, formato);
+    }
+
+    private static synchronized void imprimirBinario(List<Pokemon> lista,
+                                                     Ordem ordem,
+                                                     Formato formato)
+    {
+        reservar(10);
+        BUF.putInt(MAGICO).put((byte)formato.ordinal()).put((byte)ordem.ordinal());
+        BUF.putInt(lista.size());
+
+        for (Pokemon p : lista) {
+            if (formato == Formato.IDS) {
+                reservar(4);
+                BUF.putInt(p.getId());
+            } else {
+                registro(p, ordem);
+            }
+        }
+    }
+
+    // O campo principal tem a largura da ordem: o rank do tipo (o primeiro, na
+    // ordem alfabética dos nomes) num byte, a altura num double, a taxa de captura,
+    // a data (aaaammdd) e a geração em ints, e nada na ordem por nome.
+    private static void registro(Pokemon p, Ordem ordem)
+    {
+        Renderizador nome = Renderizador.local().texto(p.getName());
+        int principal = ordem.largura();
+        int tamanho = 4 + principal + nome.tamanho();
+        if (tamanho > 0xFFFF)
+            throw new IllegalArgumentException("Nome grande demais: #" + p.getId());
+
+        reservar(6 + principal);
+        BUF.putShort((short)tamanho).putInt(p.getId());
+        if (ordem == Ordem.TYPE)
+            BUF.put((byte)p.getTypeRank());
+        else if (ordem == Ordem.HEIGHT)
+            BUF.putDouble(p.getHeight());
+        else if (ordem == Ordem.CAPTURE_RATE)
+            BUF.putInt(p.getCaptureRate());
+        else if (ordem == Ordem.CAPTURE_DATE)
+            BUF.putInt(p.getPackedCaptureDate());
+        else if (ordem == Ordem.GENERATION)
+            BUF.putInt(p.getGeneration());
+
+        escrever(nome.bytes(), 0, nome.tamanho());
+    }
+
+    // Descarrega o buffer se não couberem mais `n` bytes nele.
+    private static void reservar(int n)
+    {
+        if (BUF.remaining() < n)
+            descarregar();
+    }
+
+    // Junta as linhas da fatia, cada uma seguida da quebra, num buffer só.
+    private static Renderizador renderizar(List<Pokemon> fatia)
+    {
+        Renderizador r = new Renderizador(256 * fatia.size());
+        for (Pokemon p : fatia)
+            p.imprimir(r).bytes(QUEBRA);
+        return r;
+    }
+
+    // Como o PrintStream, não propaga falhas de escrita: se stdout fechar (EPIPE,
+    // com `| head`), marca o erro e descarta o que vier depois. descarregar() roda
+    // também no gancho de desligamento, onde uma exceção só viraria stack trace.
+    static synchronized void descarregar()
+    {
+        BUF.flip();
+        try {
+            while (!falhou && BUF.hasRemaining())
+                CANAL.write(BUF);
+        } catch (IOException e) {
+            falhou = true;
+        } finally {
+            BUF.clear();
+        }
+    }
+}
+
+// Analisa uma linha do CSV percorrendo seus bytes uma única vez, sem split nem
+// expressões regulares. Cada thread reaproveita a sua instância entre linhas.
+final class AnalisadorCSV
+{
+    private static final ThreadLocal<AnalisadorCSV> LOCAL =
+        ThreadLocal.withInitial(AnalisadorCSV::new);
+
+    // Potências de 10 representáveis exatamente em um double.
+    private static final double[] POT10 = {
+        1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Nomes dos tipos em minúsculas, como aparecem no CSV.
+    private static final Pokemon.PokeType[] TIPOS = Pokemon.PokeType.values();
+    private static final byte[][] NOMES_TIPOS = new byte[TIPOS.length][];
+    static {
+        for (int i = 0; i < TIPOS.length; ++i)
+            NOMES_TIPOS[i] =
+                TIPOS[i].name().toLowerCase().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer buf;
+    private int pos, fim;
+    private byte[] tmp = new byte[64]; // Cópia dos bytes de um campo de texto.
+    private int[] codigos = new int[8]; // Códigos das habilidades da linha.
+
+    private AnalisadorCSV()
+    {
+    }
+
+    // Retorna o analisador da thread atual, posicionado no início da linha.
+    static AnalisadorCSV local(ByteBuffer buf, int ini, int fim)
+    {
+        AnalisadorCSV a = LOCAL.get();
+        a.buf = buf;
+        a.pos = ini;
+        a.fim = fim;
+        return a;
+    }
+
+    // Lê um campo inteiro. Aceita o mesmo que Integer.parseInt(): um sinal opcional
+    // e dígitos, sem passar dos limites de um int.
+    int inteiro()
+    {
+        boolean negativo = pos < fim && buf.get(pos) == '-';
+        if (negativo || (pos < fim && buf.get(pos) == '+'))
+            ++pos;
+
+        long limite = negativo ? -(long)Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int ini = pos;
+        long res = 0;
+        byte b;
+        while (pos < fim && (b = buf.get(pos)) != ',') {
+            if (b < '0' || b > '9')
+                throw erro("inteiro");
+            res = res * 10 + (b - '0');
+            if (res > limite)
+                throw erro("inteiro");
+            ++pos;
+        }
+        if (pos == ini)
+            throw erro("inteiro");
+
+        ++pos; // Pula a vírgula.
+        return (int)(negativo ? -res : res);
+    }
+
+    // Lê um campo decimal. Se estiver vazio, vale 0. O caminho rápido só entende
+    // dígitos com um ponto opcional; qualquer outra coisa (sinal, expoente, espaços)
+    // fica com Double.parseDouble(), que aceita e rejeita o mesmo que antes.
+    double decimal()
+    {
+        int ini = pos, digitos = 0, casas = -1;
+        boolean numero = false; // Se apareceu algum dígito.
+        long mantissa = 0;
+        byte b;
+
+        while (pos < fim && (b = buf.get(pos)) != ',') {
+            if (b == '.' && casas < 0) {
+                casas = 0;
+            } else if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                numero = true;
+                if (mantissa != 0)
+                    ++digitos;
+                if (casas >= 0)
+                    ++casas;
+            } else {
+                pos = Delimitadores.proximo(buf, pos, fim, Delimitadores.VIRGULA) + 1;
+                return Double.parseDouble(texto(ini, pos - 1));
+            }
+            ++pos;
+        }
+        ++pos; // Pula a vírgula.
+
+        if (pos - 1 == ini)
+            return 0;
+
+        // Com até 15 dígitos, mantissa e potência são exatas e a divisão é
+        // arredondada corretamente, como em Double.parseDouble().
+        if (numero && digitos <= 15 && casas < POT10.length)
+            return (casas > 0) ? mantissa / POT10[casas] : mantissa;
+
+        return Double.parseDouble(texto(ini, pos - 1));
+    }
+
+    // Pula um campo sem decodificá-lo.
+    void pular()
+    {
+        pos = Delimitadores.proximo(buf, pos, fim, Delimitadores.VIRGULA) + 1;
+    }
+
+    // Pula a lista de habilidades, entre aspas, sem decodificá-la.
+    void pularHabilidades()
+    {
+        if (pos >= fim || buf.get(pos) != '"')
+            throw erro("habilidades");
+        pos = Delimitadores.proximo(buf, pos + 1, fim, Delimitadores.ASPAS) + 2;
+    }
+
+    // Lê um campo de texto.
+    String texto()
+    {
+        int ini = pos;
+        pos = Delimitadores.proximo(buf, pos, fim, Delimitadores.VIRGULA);
+        return texto(ini, pos++);
+    }
+
+    // Lê um campo de texto repetitivo, retornando seu código no Dicionario.
+    int codigo()
+    {
+        int ini = pos;
+        pos = Delimitadores.proximo(buf, pos, fim, Delimitadores.VIRGULA);
+
+        int len = pos++ - ini;
+        if (buf.hasArray())
+            return Dicionario.codigo(buf.array(), buf.arrayOffset() + ini, len);
+
+        if (len > tmp.length)
+            tmp = new byte[Math.max(len, 2 * tmp.length)];
+        buf.get(ini, tmp, 0, len);
+        return Dicionario.codigo(tmp, 0, len);
+    }
+
+    // Lê um tipo. Se o campo estiver vazio, retorna null.
+    Pokemon.PokeType tipo()
+    {
+        int ini = pos;
+        pos = Delimitadores.proximo(buf, pos, fim, Delimitadores.VIRGULA);
+        int len = pos++ - ini;
+
+        if (len == 0)
+            return null;
+
+        for (int t = 0; t < TIPOS.length; ++t) {
+            byte[] nome = NOMES_TIPOS[t];
+            if (nome.length != len)
+                continue;
+
+            int i = 0;
+            while (i < len && (buf.get(ini + i) | 0x20) == nome[i])
+                ++i;
+            if (i == len)
+                return TIPOS[t];
+        }
+
+        throw erro("tipo");
+    }
+
+    // Lê a lista de habilidades, no formato "['A', 'B']", como códigos no Dicionario.
+    int[] habilidades()
+    {
+        if (pos >= fim || buf.get(pos) != '"')
+            throw erro("habilidades");
+        ++pos;
+
+        int len = 0, num = 0;
+        byte b;
+        while (pos < fim && (b = buf.get(pos)) != '"') {
+            if (b == ',' && pos + 1 < fim && buf.get(pos + 1) == ' ') {
+                // Fim de uma habilidade.
+                if (len > 0)
+                    num = adicionar(num, Dicionario.codigo(tmp, 0, len));
+                len = 0;
+                ++pos;
+            } else if (b != '[' && b != ']' && b != '\'') {
+                if (len == tmp.length)
+                    tmp = Arrays.copyOf(tmp, 2 * len);
+                tmp[len++] = b;
+            }
+            ++pos;
+        }
+        if (len > 0)
+            num = adicionar(num, Dicionario.codigo(tmp, 0, len));
+
+        pos += 2; // Pula as aspas e a vírgula.
+        return Arrays.copyOf(codigos, num);
+    }
+
+    // Lê uma data no formato dd/MM/yyyy, empacotada como aaaammdd.
+    int data()
+    {
+        int dia = 0, mes = 0, ano = 0, parte = 0;
+        byte b;
+
+        while (pos < fim && (b = buf.get(pos)) != ',') {
+            if (b == '/') {
+                ++parte;
+            } else if (b >= '0' && b <= '9' && parte == 0) {
+                dia = dia * 10 + (b - '0');
+            } else if (b >= '0' && b <= '9' && parte == 1) {
+                mes = mes * 10 + (b - '0');
+            } else if (b >= '0' && b <= '9' && parte == 2) {
+                ano = ano * 10 + (b - '0');
+            } else {
+                throw erro("data");
+            }
+            ++pos;
+        }
+        if (parte != 2 || mes < 1 || mes > 12 || dia < 1 || dia > diasNoMes(mes, ano))
+            throw erro("data");
+
+        ++pos; // Pula a vírgula, se houver.
+        return ano * 10000 + mes * 100 + dia;
+    }
+
+    private static int diasNoMes(int mes, int ano)
+    {
+        if (mes == 2)
+            return (ano % 4 == 0 && (ano % 100 != 0 || ano % 400 == 0)) ? 29 : 28;
+        return (mes == 4 || mes == 6 || mes == 9 || mes == 11) ? 30 : 31;
+    }
+
+    // Decodifica os bytes em [ini, fim) como UTF-8.
+    private String texto(int ini, int fim)
+    {
+        int len = fim - ini;
+        if (buf.hasArray())
+            return new String(buf.array(), buf.arrayOffset() + ini, len,
+                              StandardCharsets.UTF_8);
+
+        if (len > tmp.length)
+            tmp = new byte[Math.max(len, 2 * tmp.length)];
+        buf.get(ini, tmp, 0, len);
+        return new String(tmp, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private int adicionar(int num, int codigo)
+    {
+        if (num == codigos.length)
+            codigos = Arrays.copyOf(codigos, 2 * num);
+        codigos[num] = codigo;
+        return num + 1;
+    }
+
+    private ArrayIndexOutOfBoundsException erro(String campo)
+    {
+        return new ArrayIndexOutOfBoundsException("Campo " + campo +
+                                                  " inválido na posição " + pos);
+    }
+}
+
+// Busca de delimitadores em palavras de 8 bytes (SWAR), quatro palavras (32 bytes)
+// por iteração enquanto houver espaço, e byte a byte só no final.
+final class Delimitadores
+{
+    static final long QUEBRA = repetir('\n');
+    static final long VIRGULA = repetir(',');
+    static final long ASPAS = repetir('"');
+
+    private static final long BAIXOS = 0x7f7f7f7f7f7f7f7fL;
+
+    private Delimitadores()
+    {
+    }
+
+    // Repete o byte `c` nos oito bytes de um long.
+    static long repetir(char c)
+    {
+        return (c & 0xffL) * 0x0101010101010101L;
+    }
+
+    // Retorna a posição do primeiro byte igual ao de `padrao` em [ini, fim), ou `fim`
+    // se não houver.
+    static int proximo(ByteBuffer buf, int ini, int fim, long padrao)
+    {
+        boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+
+        for (; ini + 32 <= fim; ini += 32) {
+            long a = iguais(buf.getLong(ini), padrao);
+            long b = iguais(buf.getLong(ini + 8), padrao);
+            long c = iguais(buf.getLong(ini + 16), padrao);
+            long d = iguais(buf.getLong(ini + 24), padrao);
+
+            if ((a | b | c | d) != 0) {
+                if (a != 0)
+                    return ini + primeiro(a, bigEndian);
+                if (b != 0)
+                    return ini + 8 + primeiro(b, bigEndian);
+                if (c != 0)
+                    return ini + 16 + primeiro(c, bigEndian);
+                return ini + 24 + primeiro(d, bigEndian);
+            }
+        }
+
+        for (; ini + 8 <= fim; ini += 8) {
+            long a = iguais(buf.getLong(ini), padrao);
+            if (a != 0)
+                return ini + primeiro(a, bigEndian);
+        }
+
+        byte alvo = (byte)padrao;
+        while (ini < fim && buf.get(ini) != alvo)
+            ++ini;
+        return ini;
+    }
+
+    // Liga o bit mais alto de cada byte de `palavra` igual ao de `padrao`, e zera
+    // todo o resto (sem falsos positivos).
+    private static long iguais(long palavra, long padrao)
+    {
+        long x = palavra ^ padrao;
+        return ~(((x & BAIXOS) + BAIXOS) | x | BAIXOS);
+    }
+
+    // Índice, na memória, do primeiro byte marcado.
+    private static int primeiro(long marcas, boolean bigEndian)
+    {
+        return (bigEndian ? Long.numberOfLeadingZeros(marcas)
+                          : Long.numberOfTrailingZeros(marcas)) >>> 3;
+    }
+}
+
+// Dicionário global dos textos que se repetem entre Pokémon (descrições e
+// habilidades). Cada texto distinto recebe um código inteiro, os Pokémon guardam
+// só os códigos e textos iguais são comparados como inteiros.
+//
+// Ler um texto e procurar um que já existe não travam nada: as entradas são
+// imutáveis, e os vetores só são trocados (por cópias maiores) via campos
+// volatile. Só a inserção de um texto novo é sincronizada, então a leitura
+// paralela do CSV e a renderização paralela não disputam um monitor.
+final class Dicionario
+{
+    private static final class Entrada
+    {
+        final byte[] bytes; // UTF-8. Não deve ser alterado.
+        final String texto;
+        final int codigo;
+
+        Entrada(byte[] bytes, int codigo)
+        {
+            this.bytes = bytes;
+            this.texto = new String(bytes, StandardCharsets.UTF_8);
+            this.codigo = codigo;
+        }
+    }
+
+    private static volatile Entrada[] entradas = new Entrada[256]; // Por código.
+    private static int n = 0; // Só muda com o monitor da classe.
+
+    // Tabela de espalhamento com endereçamento aberto, no máximo meio cheia.
+    private static volatile Entrada[] tabela = new Entrada[512];
+
+    private Dicionario()
+    {
+    }
+
+    static String texto(int codigo)
+    {
+        return entrada(codigo).texto;
+    }
+
+    // Bytes UTF-8 do texto. Não devem ser alterados.
+    static byte[] bytes(int codigo)
+    {
+        return entrada(codigo).bytes;
+    }
+
+    static int codigo(String s)
+    {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return codigo(b, 0, b.length);
+    }
+
+    static int[] codigos(List<String> lista)
+    {
+        int[] res = new int[lista.size()];
+        for (int i = 0; i < res.length; ++i)
+            res[i] = codigo(lista.get(i));
+        return res;
+    }
+
+    // Retorna o código do texto com os bytes UTF-8 em b[ini, ini + len),
+    // adicionando-o ao dicionário se ainda não estiver lá.
+    static int codigo(byte[] b, int ini, int len)
+    {
+        Entrada e = procurar(tabela, b, ini, len);
+        return (e != null) ? e.codigo : adicionar(b, ini, len);
+    }
+
+    // Quem tem um código o recebeu de codigo(), que já publicou a entrada; mas, se
+    // ele chegou a esta thread sem sincronização, ela pode não vê-la ainda.
+    private static Entrada entrada(int codigo)
+    {
+        Entrada e = entradas[codigo];
+        if (e != null)
+            return e;
+        synchronized (Dicionario.class) {
+            return entradas[codigo];
+        }
+    }
+
+    // A entrada com esses bytes em `t`, ou null. Sem travar: numa tabela antiga,
+    // um texto recém-adicionado só não é achado, e adicionar() procura de novo.
+    private static Entrada procurar(Entrada[] t, byte[] b, int ini, int len)
+    {
+        int mascara = t.length - 1;
+        for (int i = espalhar(b, ini, len) & mascara;; i = (i + 1) & mascara) {
+            Entrada e = t[i];
+            if (e == null || Arrays.equals(e.bytes, 0, e.bytes.length, b, ini, ini + len))
+                return e;
+        }
+    }
+
+    private static synchronized int adicionar(byte[] b, int ini, int len)
+    {
+        Entrada[] t = tabela;
+        Entrada e = procurar(t, b, ini, len);
+        if (e != null)
+            return e.codigo;
+
+        e = new Entrada(Arrays.copyOfRange(b, ini, ini + len), n);
+        if (n == entradas.length)
+            entradas = Arrays.copyOf(entradas, 2 * n);
+        entradas[n] = e;
+
+        // A entrada entra na tabela depois de completa. Se a tabela crescer, ela
+        // entra na cópia, que só é publicada inteira.
+        if (2 * ++n > t.length) {
+            Entrada[] nova = reespalhar(t, 2 * t.length);
+            colocar(nova, e);
+            tabela = nova;
+        } else {
+            colocar(t, e);
+        }
+
+        assert procurar(tabela, b, ini, len) == e : "texto novo fora da tabela";
+        return e.codigo;
+    }
+
+    private static Entrada[] reespalhar(Entrada[] antiga, int tamanho)
+    {
+        Entrada[] t = new Entrada[tamanho];
+        for (Entrada e : antiga)
+            if (e != null)
+                colocar(t, e);
+        return t;
+    }
+
+    private static void colocar(Entrada[] t, Entrada e)
+    {
+        int mascara = t.length - 1;
+        int i = espalhar(e.bytes, 0, e.bytes.length) & mascara;
+        while (t[i] != null)
+            i = (i + 1) & mascara;
+        t[i] = e;
+    }
+
+    private static int espalhar(byte[] b, int ini, int len)
+    {
+        int h = 1;
+        for (int i = ini; i < ini + len; ++i)
+            h = 31 * h + b[i];
+        return h ^ (h >>> 16);
     }
 }